@@ -0,0 +1,22 @@
+package com.dissertation.orderservice.client;
+
+import com.dissertation.orderservice.dto.PaymentResponse;
+import org.springframework.cloud.openfeign.FeignClient;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+
+/**
+ * Read-only payment lookups used by background jobs. Kept apart from
+ * {@link PaymentServiceClient} so it can have its own, much shorter timeouts.
+ */
+@FeignClient(name = "payment-service", contextId = "payment-status", url = "${services.payment-service.url}")
+public interface PaymentStatusClient {
+    
+    /**
+     * Returns the payment recorded for an order. When none exists the payment service
+     * answers 404 with a {@link PaymentResponse} body echoing {@code orderNumber}; a 404
+     * without that body (unknown route, wrong base URL) does not mean "no payment".
+     */
+    @GetMapping("/api/payments/order/{orderNumber}")
+    PaymentResponse getPaymentByOrderNumber(@PathVariable String orderNumber);
+}
@@ -4,6 +4,7 @@ import feign.Logger;
 import feign.RequestInterceptor;
 import feign.RequestTemplate;
 import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cloud.openfeign.EnableFeignClients;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
@@ -20,10 +21,11 @@ public class FeignConfig {
     }
     
     /**
-     * Feign RequestInterceptor to pass JWT token from incoming request to downstream services
+     * Feign RequestInterceptor to pass JWT token from incoming request to downstream services.
+     * Calls made outside a request, such as from scheduled jobs, fall back to the service token.
      */
     @Bean
-    public RequestInterceptor requestInterceptor() {
+    public RequestInterceptor requestInterceptor(@Value("${services.service-token:}") String serviceToken) {
         return new RequestInterceptor() {
             @Override
             public void apply(RequestTemplate template) {
@@ -34,6 +36,8 @@ public class FeignConfig {
                     if (authorizationHeader != null) {
                         template.header("Authorization", authorizationHeader);
                     }
+                } else if (!serviceToken.isBlank()) {
+                    template.header("Authorization", "Bearer " + serviceToken);
                 }
             }
         };
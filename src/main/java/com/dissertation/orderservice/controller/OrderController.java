@@ -1,5 +1,7 @@
 package com.dissertation.orderservice.controller;
 
+import com.dissertation.orderservice.dto.BulkStatusUpdateRequest;
+import com.dissertation.orderservice.dto.BulkStatusUpdateResponse;
 import com.dissertation.orderservice.dto.CreateOrderRequest;
 import com.dissertation.orderservice.dto.OrderResponse;
 import com.dissertation.orderservice.model.OrderStatus;
@@ -7,10 +9,13 @@ import com.dissertation.orderservice.service.OrderService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.time.LocalDateTime;
 import java.util.List;
 
 @RestController
@@ -45,13 +50,24 @@ public class OrderController {
     }
     
     @GetMapping("/{orderNumber}")
-    public ResponseEntity<OrderResponse> getOrder(@PathVariable String orderNumber) {
-        return ResponseEntity.ok(orderService.getOrderByNumber(orderNumber));
+    public ResponseEntity<OrderResponse> getOrder(@PathVariable String orderNumber, WebRequest webRequest) {
+        String etag = orderService.getOrderEtag(orderNumber);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(orderService.getOrderByNumber(orderNumber));
     }
     
     @GetMapping("/user/{username}")
-    public ResponseEntity<List<OrderResponse>> getUserOrders(@PathVariable String username) {
-        return ResponseEntity.ok(orderService.getOrdersByUsername(username));
+    public ResponseEntity<List<OrderResponse>> getUserOrders(
+            @PathVariable String username,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime updatedSince,
+            WebRequest webRequest) {
+        String etag = orderService.getUserOrdersEtag(username);
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
+        return ResponseEntity.ok().eTag(etag).body(orderService.getOrdersByUsername(username, updatedSince));
     }
     
     @GetMapping
@@ -66,6 +82,12 @@ public class OrderController {
         return ResponseEntity.ok(orderService.updateOrderStatus(orderNumber, status));
     }
     
+    @PatchMapping("/status")
+    public ResponseEntity<BulkStatusUpdateResponse> bulkUpdateOrderStatus(
+            @Valid @RequestBody BulkStatusUpdateRequest request) {
+        return ResponseEntity.ok(orderService.bulkUpdateOrderStatus(request));
+    }
+    
     @GetMapping("/health")
     public ResponseEntity<String> health() {
         return ResponseEntity.ok("Order Service is running");
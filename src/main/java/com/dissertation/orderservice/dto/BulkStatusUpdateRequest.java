@@ -0,0 +1,40 @@
+package com.dissertation.orderservice.dto;
+
+import com.dissertation.orderservice.model.OrderStatus;
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import jakarta.validation.constraints.AssertTrue;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BulkStatusUpdateRequest {
+    /**
+     * Upper bound on the orders touched by one request, whether listed explicitly or
+     * selected through {@link #currentStatus}.
+     */
+    public static final int MAX_ORDERS = 10_000;
+    
+    /**
+     * Explicit orders to update. Optional when {@link #currentStatus} is given.
+     */
+    @Size(max = MAX_ORDERS, message = "At most " + MAX_ORDERS + " order numbers per request")
+    private List<String> orderNumbers;
+    
+    /**
+     * Only orders currently in this status are updated. When no order numbers are
+     * given, every order in this status is selected.
+     */
+    private OrderStatus currentStatus;
+    
+    @NotNull(message = "Target status is required")
+    private OrderStatus targetStatus;
+    
+    @JsonIgnore
+    @AssertTrue(message = "Either orderNumbers or currentStatus is required")
+    public boolean isSelectorPresent() {
+        return (orderNumbers != null && !orderNumbers.isEmpty()) || currentStatus != null;
+    }
+}
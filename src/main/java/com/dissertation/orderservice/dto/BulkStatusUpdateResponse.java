@@ -0,0 +1,32 @@
+package com.dissertation.orderservice.dto;
+
+import com.dissertation.orderservice.model.OrderStatus;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+@Builder
+public class BulkStatusUpdateResponse {
+    private OrderStatus targetStatus;
+    private int updatedCount;
+    private List<OrderOutcome> results;
+    
+    public enum Outcome {
+        UPDATED,
+        UNCHANGED,
+        SKIPPED,
+        NOT_FOUND,
+        FAILED
+    }
+    
+    @Data
+    @AllArgsConstructor
+    public static class OrderOutcome {
+        private String orderNumber;
+        private OrderStatus previousStatus;
+        private Outcome outcome;
+    }
+}
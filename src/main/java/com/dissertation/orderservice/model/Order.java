@@ -5,12 +5,16 @@ import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "orders")
+@Table(name = "orders", indexes = {
+        @Index(name = "idx_orders_username_updated_at", columnList = "username, updated_at"),
+        @Index(name = "idx_orders_status_updated_at", columnList = "status, updated_at")
+})
 @Data
 @Builder
 @NoArgsConstructor
@@ -46,9 +50,24 @@ public class Order {
     
     private LocalDateTime updatedAt;
     
+    /**
+     * Change counter used for ETags. Incremented on every write, including bulk UPDATEs.
+     * Deliberately not a JPA {@code @Version}, so writes stay last-write-wins.
+     */
+    @ColumnDefault("0")
+    @Column(nullable = false)
+    private Long version;
+    
+    /**
+     * Lease taken by the stuck order sweep while it checks the payment for this order.
+     */
+    private LocalDateTime claimedUntil;
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
+        updatedAt = createdAt;
+        version = 0L;
         if (status == null) {
             status = OrderStatus.PENDING;
         }
@@ -57,6 +76,7 @@ public class Order {
     @PreUpdate
     protected void onUpdate() {
         updatedAt = LocalDateTime.now();
+        version = version == null ? 1L : version + 1;
     }
 }
 
@@ -2,9 +2,15 @@ package com.dissertation.orderservice.repository;
 
 import com.dissertation.orderservice.model.Order;
 import com.dissertation.orderservice.model.OrderStatus;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -13,5 +19,93 @@ public interface OrderRepository extends JpaRepository<Order, Long> {
     List<Order> findByUsername(String username);
     Optional<Order> findByOrderNumber(String orderNumber);
     List<Order> findByStatus(OrderStatus status);
+    List<Order> findByUsernameAndUpdatedAtAfterOrderByUpdatedAt(String username, LocalDateTime updatedSince);
+    
+    @Query("SELECT o.version FROM Order o WHERE o.orderNumber = :orderNumber")
+    Optional<Long> findVersionByOrderNumber(@Param("orderNumber") String orderNumber);
+    
+    /**
+     * Summary that changes on every insert (max id), delete (count) and update (version sum)
+     * of a user's orders, regardless of the order in which writes commit.
+     */
+    @Query("SELECT COUNT(o) AS orderCount, COALESCE(SUM(o.version), 0) AS versionSum, " +
+           "COALESCE(MAX(o.id), 0) AS maxId FROM Order o WHERE o.username = :username")
+    ChangeMarker findChangeMarkerByUsername(@Param("username") String username);
+    
+    List<StatusView> findByOrderNumberIn(Collection<String> orderNumbers);
+    
+    @Query("SELECT o.orderNumber FROM Order o WHERE o.status = :status ORDER BY o.id")
+    List<String> findOrderNumbersByStatus(@Param("status") OrderStatus status, Pageable pageable);
+    
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :status, o.updatedAt = :updatedAt, o.version = o.version + 1 " +
+           "WHERE o.orderNumber = :orderNumber")
+    int updateStatusByOrderNumber(@Param("orderNumber") String orderNumber,
+                                  @Param("status") OrderStatus status,
+                                  @Param("updatedAt") LocalDateTime updatedAt);
+    
+    /**
+     * Set-based status transition. Only rows still in {@code expected} are touched, so a
+     * concurrent change between reading and updating is never overwritten. Entity
+     * callbacks do not run for bulk updates, hence {@code updatedAt} and {@code version}
+     * are set explicitly.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :target, o.updatedAt = :updatedAt, o.version = o.version + 1 " +
+           "WHERE o.orderNumber IN :orderNumbers AND o.status = :expected")
+    int updateStatusIfCurrent(@Param("orderNumbers") Collection<String> orderNumbers,
+                              @Param("expected") OrderStatus expected,
+                              @Param("target") OrderStatus target,
+                              @Param("updatedAt") LocalDateTime updatedAt);
+    
+    /**
+     * Claims a batch of orders that have sat in one of {@code statuses} since before
+     * {@code cutoff} and are not leased to another sweeper. Rows locked by another
+     * transaction are skipped rather than waited on. Ids are consumed in ascending order
+     * after {@code afterId} so a single sweep does not revisit rows.
+     */
+    @Query(value = "SELECT * FROM orders " +
+                   "WHERE status IN (:statuses) AND updated_at < :cutoff " +
+                   "AND (claimed_until IS NULL OR claimed_until < :now) AND id > :afterId " +
+                   "ORDER BY id LIMIT :limit FOR UPDATE SKIP LOCKED",
+           nativeQuery = true)
+    List<Order> claimStuckOrders(@Param("statuses") Collection<String> statuses,
+                                 @Param("cutoff") LocalDateTime cutoff,
+                                 @Param("now") LocalDateTime now,
+                                 @Param("afterId") long afterId,
+                                 @Param("limit") int limit);
+    
+    @Modifying
+    @Query("UPDATE Order o SET o.claimedUntil = :claimedUntil WHERE o.id IN :ids")
+    int leaseOrders(@Param("ids") Collection<Long> ids, @Param("claimedUntil") LocalDateTime claimedUntil);
+    
+    /**
+     * Applies the outcome of a stuck order check, provided the order is still in one of
+     * {@code statuses}; returns 0 when another writer resolved it in the meantime.
+     */
+    @Modifying(flushAutomatically = true, clearAutomatically = true)
+    @Query("UPDATE Order o SET o.status = :target, o.paymentId = COALESCE(:paymentId, o.paymentId), " +
+           "o.updatedAt = :updatedAt, o.version = o.version + 1, o.claimedUntil = NULL " +
+           "WHERE o.id = :id AND o.status IN :statuses")
+    int resolveStuckOrder(@Param("id") Long id,
+                          @Param("statuses") Collection<OrderStatus> statuses,
+                          @Param("target") OrderStatus target,
+                          @Param("paymentId") String paymentId,
+                          @Param("updatedAt") LocalDateTime updatedAt);
+    
+    @Query("SELECT COUNT(o) FROM Order o WHERE o.status IN :statuses AND o.updatedAt < :cutoff")
+    long countStuckOrders(@Param("statuses") Collection<OrderStatus> statuses,
+                          @Param("cutoff") LocalDateTime cutoff);
+    
+    interface ChangeMarker {
+        long getOrderCount();
+        long getVersionSum();
+        long getMaxId();
+    }
+    
+    interface StatusView {
+        String getOrderNumber();
+        OrderStatus getStatus();
+        LocalDateTime getUpdatedAt();
+    }
 }
-
@@ -4,15 +4,28 @@ import com.dissertation.orderservice.client.NotificationServiceClient;
 import com.dissertation.orderservice.client.PaymentServiceClient;
 import com.dissertation.orderservice.client.UserServiceClient;
 import com.dissertation.orderservice.dto.*;
+import com.dissertation.orderservice.dto.BulkStatusUpdateResponse.OrderOutcome;
+import com.dissertation.orderservice.dto.BulkStatusUpdateResponse.Outcome;
 import com.dissertation.orderservice.model.Order;
 import com.dissertation.orderservice.model.OrderStatus;
 import com.dissertation.orderservice.repository.OrderRepository;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 import java.util.stream.Collectors;
 
@@ -25,8 +38,19 @@ public class OrderService {
     private final UserServiceClient userServiceClient;
     private final PaymentServiceClient paymentServiceClient;
     private final NotificationServiceClient notificationServiceClient;
+    private final TransactionTemplate transactionTemplate;
     
-    @Transactional
+    @Value("${orders.bulk-update.batch-size:500}")
+    private int bulkUpdateBatchSize;
+    
+    @Value("${orders.polling.updated-since-overlap:PT30S}")
+    private Duration updatedSinceOverlap;
+    
+    /**
+     * Not transactional: every save commits on its own, so an order already committed as
+     * PAYMENT_PROCESSING survives a crash or a failed payment call and is later resolved
+     * by {@link StuckOrderReconciler}.
+     */
     public OrderResponse createOrder(CreateOrderRequest request) {
         // Validate user exists
         UserResponse user;
@@ -58,59 +82,49 @@ public class OrderService {
         order = orderRepository.save(order);
         
         // Process payment
+        order.setStatus(OrderStatus.PAYMENT_PROCESSING);
+        order = orderRepository.save(order);
+        log.info("Processing payment for order: {}, amount: {}", order.getOrderNumber(), totalAmount);
+        
+        PaymentRequest paymentRequest = PaymentRequest.builder()
+                .orderNumber(order.getOrderNumber())
+                .username(request.getUsername())
+                .amount(totalAmount)
+                .build();
+        
+        PaymentResponse paymentResponse;
         try {
-            order.setStatus(OrderStatus.PAYMENT_PROCESSING);
-            orderRepository.save(order);
-            log.info("Processing payment for order: {}, amount: {}", order.getOrderNumber(), totalAmount);
-            
-            PaymentRequest paymentRequest = PaymentRequest.builder()
-                    .orderNumber(order.getOrderNumber())
-                    .username(request.getUsername())
-                    .amount(totalAmount)
-                    .build();
-            
-            PaymentResponse paymentResponse = null;
-            try {
-                paymentResponse = paymentServiceClient.processPayment(paymentRequest);
-                log.info("Payment service response received: status={}, paymentId={}", 
-                        paymentResponse != null ? paymentResponse.getStatus() : "null",
-                        paymentResponse != null ? paymentResponse.getPaymentId() : "null");
-            } catch (Exception feignException) {
-                log.error("Feign client exception when calling payment service: {}", feignException.getMessage(), feignException);
-                throw new RuntimeException("Payment service call failed: " + feignException.getMessage(), feignException);
-            }
-            
-            if (paymentResponse == null) {
-                log.error("Payment response is null");
-                order.setStatus(OrderStatus.PAYMENT_FAILED);
-                orderRepository.save(order);
-                throw new RuntimeException("Payment service returned null response");
-            }
-            
-            if ("COMPLETED".equals(paymentResponse.getStatus())) {
-                order.setStatus(OrderStatus.PAYMENT_COMPLETED);
-                order.setPaymentId(paymentResponse.getPaymentId());
-                order = orderRepository.save(order);
-                log.info("Payment completed successfully for order: {}", order.getOrderNumber());
-                
-                // Send notification
-                sendOrderNotification(user, order, "Order Created Successfully");
-            } else {
-                log.warn("Payment processing failed. Status: {}, Order: {}", paymentResponse.getStatus(), order.getOrderNumber());
-                order.setStatus(OrderStatus.PAYMENT_FAILED);
-                orderRepository.save(order);
-                throw new RuntimeException("Payment processing failed with status: " + paymentResponse.getStatus());
-            }
-        } catch (RuntimeException e) {
-            log.error("Payment processing failed with RuntimeException: {}", e.getMessage(), e);
+            paymentResponse = paymentServiceClient.processPayment(paymentRequest);
+            log.info("Payment service response received: status={}, paymentId={}", 
+                    paymentResponse != null ? paymentResponse.getStatus() : "null",
+                    paymentResponse != null ? paymentResponse.getPaymentId() : "null");
+        } catch (Exception feignException) {
+            // The payment may or may not have been taken, so the order stays in PAYMENT_PROCESSING
+            // until the reconciler has asked the payment service
+            log.error("Feign client exception when calling payment service: {}", feignException.getMessage(), feignException);
+            throw new RuntimeException("Payment service call failed: " + feignException.getMessage(), feignException);
+        }
+        
+        if (paymentResponse == null) {
+            log.error("Payment response is null");
             order.setStatus(OrderStatus.PAYMENT_FAILED);
             orderRepository.save(order);
-            throw e; // Re-throw to preserve the original exception
-        } catch (Exception e) {
-            log.error("Payment processing failed with unexpected exception: {}", e.getMessage(), e);
+            throw new RuntimeException("Payment service returned null response");
+        }
+        
+        if ("COMPLETED".equals(paymentResponse.getStatus())) {
+            order.setStatus(OrderStatus.PAYMENT_COMPLETED);
+            order.setPaymentId(paymentResponse.getPaymentId());
+            order = orderRepository.save(order);
+            log.info("Payment completed successfully for order: {}", order.getOrderNumber());
+            
+            // Send notification
+            sendOrderNotification(user, order, "Order Created Successfully");
+        } else {
+            log.warn("Payment processing failed. Status: {}, Order: {}", paymentResponse.getStatus(), order.getOrderNumber());
             order.setStatus(OrderStatus.PAYMENT_FAILED);
             orderRepository.save(order);
-            throw new RuntimeException("Order creation failed: " + e.getMessage(), e);
+            throw new RuntimeException("Payment processing failed with status: " + paymentResponse.getStatus());
         }
         
         return mapToResponse(order);
@@ -122,6 +136,34 @@ public class OrderService {
                 .collect(Collectors.toList());
     }
     
+    public List<OrderResponse> getOrdersByUsername(String username, LocalDateTime updatedSince) {
+        if (updatedSince == null) {
+            return getOrdersByUsername(username);
+        }
+        // Writes can commit after later-stamped ones, so look back a little and let clients dedupe
+        LocalDateTime from = updatedSince.minus(updatedSinceOverlap);
+        return orderRepository.findByUsernameAndUpdatedAtAfterOrderByUpdatedAt(username, from).stream()
+                .map(this::mapToResponse)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * Strong ETag for a single order, derived from its version without loading the full row.
+     */
+    public String getOrderEtag(String orderNumber) {
+        Long version = orderRepository.findVersionByOrderNumber(orderNumber)
+                .orElseThrow(() -> new RuntimeException("Order not found: " + orderNumber));
+        return etag(version);
+    }
+    
+    /**
+     * Strong ETag for a user's order list, built from a summary that every write changes.
+     */
+    public String getUserOrdersEtag(String username) {
+        OrderRepository.ChangeMarker marker = orderRepository.findChangeMarkerByUsername(username);
+        return etag(marker.getOrderCount(), marker.getVersionSum(), marker.getMaxId());
+    }
+    
     public OrderResponse getOrderByNumber(String orderNumber) {
         Order order = orderRepository.findByOrderNumber(orderNumber)
                 .orElseThrow(() -> new RuntimeException("Order not found: " + orderNumber));
@@ -136,13 +178,123 @@ public class OrderService {
     
     @Transactional
     public OrderResponse updateOrderStatus(String orderNumber, OrderStatus status) {
+        // A single UPDATE keeps this last-write-wins while still incrementing the change counter
+        // atomically when a bulk update or the stuck order sweep touches the same row
+        int updated = orderRepository.updateStatusByOrderNumber(orderNumber, status, LocalDateTime.now());
+        if (updated == 0) {
+            throw new RuntimeException("Order not found: " + orderNumber);
+        }
+        
         Order order = orderRepository.findByOrderNumber(orderNumber)
                 .orElseThrow(() -> new RuntimeException("Order not found: " + orderNumber));
+        return mapToResponse(order);
+    }
+    
+    /**
+     * Applies a status transition to many orders at once using conditional UPDATE
+     * statements, one per batch of order numbers and prior status, instead of a
+     * load-and-save round trip per order. Every batch commits in its own transaction,
+     * so row locks are held for one batch only; a failing batch is reported as
+     * {@code FAILED} without undoing batches that already committed.
+     */
+    public BulkStatusUpdateResponse bulkUpdateOrderStatus(BulkStatusUpdateRequest request) {
+        OrderStatus target = request.getTargetStatus();
+        OrderStatus filter = request.getCurrentStatus();
         
-        order.setStatus(status);
-        order = orderRepository.save(order);
+        List<String> orderNumbers;
+        if (request.getOrderNumbers() != null && !request.getOrderNumbers().isEmpty()) {
+            orderNumbers = request.getOrderNumbers().stream().distinct().collect(Collectors.toList());
+        } else {
+            orderNumbers = orderRepository.findOrderNumbersByStatus(filter,
+                    PageRequest.of(0, BulkStatusUpdateRequest.MAX_ORDERS));
+        }
         
-        return mapToResponse(order);
+        List<OrderOutcome> results = new ArrayList<>(orderNumbers.size());
+        for (int from = 0; from < orderNumbers.size(); from += bulkUpdateBatchSize) {
+            List<String> batch = orderNumbers.subList(from, Math.min(from + bulkUpdateBatchSize, orderNumbers.size()));
+            try {
+                results.addAll(transactionTemplate.execute(tx -> applyStatusBatch(batch, filter, target)));
+            } catch (RuntimeException e) {
+                log.error("Bulk status update batch of {} orders failed: {}", batch.size(), e.getMessage(), e);
+                batch.forEach(n -> results.add(new OrderOutcome(n, null, Outcome.FAILED)));
+            }
+        }
+        
+        int updatedCount = (int) results.stream().filter(r -> r.getOutcome() == Outcome.UPDATED).count();
+        log.info("Bulk status update to {}: {} requested, {} updated", target, orderNumbers.size(), updatedCount);
+        return BulkStatusUpdateResponse.builder()
+                .targetStatus(target)
+                .updatedCount(updatedCount)
+                .results(results)
+                .build();
+    }
+    
+    private List<OrderOutcome> applyStatusBatch(List<String> batch, OrderStatus filter, OrderStatus target) {
+        // Truncated to the database timestamp precision so re-read rows compare equal
+        LocalDateTime now = LocalDateTime.now().truncatedTo(ChronoUnit.MICROS);
+        Map<String, OrderRepository.StatusView> previous = currentStatuses(batch);
+        Map<String, Outcome> outcomes = new HashMap<>();
+        Map<OrderStatus, List<String>> pending = new EnumMap<>(OrderStatus.class);
+        
+        for (String orderNumber : batch) {
+            OrderRepository.StatusView view = previous.get(orderNumber);
+            if (view == null) {
+                outcomes.put(orderNumber, Outcome.NOT_FOUND);
+            } else if (view.getStatus() == target) {
+                outcomes.put(orderNumber, Outcome.UNCHANGED);
+            } else if (filter != null && view.getStatus() != filter) {
+                outcomes.put(orderNumber, Outcome.SKIPPED);
+            } else {
+                pending.computeIfAbsent(view.getStatus(), s -> new ArrayList<>()).add(orderNumber);
+            }
+        }
+        
+        for (Map.Entry<OrderStatus, List<String>> group : pending.entrySet()) {
+            List<String> orderNumbers = group.getValue();
+            int count = orderRepository.updateStatusIfCurrent(orderNumbers, group.getKey(), target, now);
+            if (count >= orderNumbers.size()) {
+                orderNumbers.forEach(n -> outcomes.put(n, Outcome.UPDATED));
+            } else {
+                // Some rows changed between the read and the update. Rows this statement moved carry
+                // our timestamp and stay locked until commit, so they are told apart from rows a
+                // concurrent writer moved to the same status.
+                Map<String, OrderRepository.StatusView> after = currentStatuses(orderNumbers);
+                orderNumbers.forEach(n -> outcomes.put(n, updatedBy(after.get(n), target, now)
+                        ? Outcome.UPDATED : Outcome.SKIPPED));
+            }
+        }
+        
+        List<OrderOutcome> results = new ArrayList<>(batch.size());
+        for (String orderNumber : batch) {
+            OrderRepository.StatusView view = previous.get(orderNumber);
+            results.add(new OrderOutcome(orderNumber, view != null ? view.getStatus() : null, outcomes.get(orderNumber)));
+        }
+        return results;
+    }
+    
+    private static boolean updatedBy(OrderRepository.StatusView view, OrderStatus target, LocalDateTime now) {
+        return view != null && view.getStatus() == target && now.equals(view.getUpdatedAt());
+    }
+    
+    private Map<String, OrderRepository.StatusView> currentStatuses(List<String> orderNumbers) {
+        return orderRepository.findByOrderNumberIn(orderNumbers).stream()
+                .collect(Collectors.toMap(OrderRepository.StatusView::getOrderNumber,
+                        view -> view, (first, second) -> first));
+    }
+    
+    /**
+     * Sends the order confirmation for an order whose payment completed outside
+     * {@link #createOrder}, e.g. one recovered by the stuck order sweep.
+     */
+    public void notifyOrderCreated(Order order) {
+        UserResponse user;
+        try {
+            user = userServiceClient.getUserByUsername(order.getUsername());
+        } catch (Exception e) {
+            log.error("Failed to look up user {} for notification: {}", order.getUsername(), e.getMessage());
+            return;
+        }
+        sendOrderNotification(user, order, "Order Created Successfully");
     }
     
     private void sendOrderNotification(UserResponse user, Order order, String subject) {
@@ -175,7 +327,14 @@ public class OrderService {
                 .status(order.getStatus())
                 .paymentId(order.getPaymentId())
                 .createdAt(order.getCreatedAt() != null ? order.getCreatedAt() : java.time.LocalDateTime.now())
+                .updatedAt(order.getUpdatedAt())
                 .build();
     }
+    
+    private static String etag(long... parts) {
+        return Arrays.stream(parts)
+                .mapToObj(Long::toHexString)
+                .collect(Collectors.joining("-", "\"", "\""));
+    }
 }
 
@@ -0,0 +1,168 @@
+package com.dissertation.orderservice.service;
+
+import com.dissertation.orderservice.client.PaymentStatusClient;
+import com.dissertation.orderservice.dto.PaymentResponse;
+import com.dissertation.orderservice.model.Order;
+import com.dissertation.orderservice.model.OrderStatus;
+import com.dissertation.orderservice.repository.OrderRepository;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import feign.FeignException;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Periodically resolves orders left in PENDING or PAYMENT_PROCESSING, e.g. after a crash
+ * mid-{@code createOrder} or a payment timeout. A batch is claimed with
+ * {@code FOR UPDATE SKIP LOCKED} and leased through {@code claimedUntil} in one short
+ * transaction, so any number of replicas can sweep concurrently. Payment lookups run
+ * outside any transaction, and each result is applied with a conditional UPDATE that
+ * only succeeds while the order is still stuck.
+ */
+@Component
+@ConditionalOnProperty(name = "orders.reconciliation.enabled", havingValue = "true", matchIfMissing = true)
+@RequiredArgsConstructor
+@Slf4j
+public class StuckOrderReconciler {
+    
+    private static final List<OrderStatus> STUCK_STATUSES =
+            List.of(OrderStatus.PENDING, OrderStatus.PAYMENT_PROCESSING);
+    private static final List<String> STUCK_STATUS_NAMES =
+            STUCK_STATUSES.stream().map(Enum::name).toList();
+    
+    private final OrderRepository orderRepository;
+    private final PaymentStatusClient paymentStatusClient;
+    private final OrderService orderService;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final ObjectMapper objectMapper;
+    
+    private final AtomicLong backlog = new AtomicLong();
+    
+    @Value("${orders.reconciliation.batch-size:20}")
+    private int batchSize;
+    
+    @Value("${orders.reconciliation.stuck-after:PT5M}")
+    private Duration stuckAfter;
+    
+    @Value("${orders.reconciliation.lease:PT2M}")
+    private Duration lease;
+    
+    @PostConstruct
+    void registerMetrics() {
+        meterRegistry.gauge("orders.reconciliation.backlog", backlog);
+    }
+    
+    @Scheduled(fixedDelayString = "${orders.reconciliation.interval:PT1M}",
+               initialDelayString = "${orders.reconciliation.initial-delay:PT1M}")
+    public void sweep() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(stuckAfter);
+        long afterId = 0;
+        List<Order> claimed;
+        do {
+            long from = afterId;
+            claimed = transactionTemplate.execute(tx -> claimBatch(cutoff, from));
+            claimed.forEach(this::reconcile);
+            if (!claimed.isEmpty()) {
+                afterId = claimed.get(claimed.size() - 1).getId();
+            }
+        } while (claimed.size() == batchSize);
+        
+        backlog.set(orderRepository.countStuckOrders(STUCK_STATUSES, cutoff));
+        if (backlog.get() > 0) {
+            log.info("Stuck order sweep finished, {} orders still awaiting resolution", backlog.get());
+        }
+    }
+    
+    private List<Order> claimBatch(LocalDateTime cutoff, long afterId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<Order> orders = orderRepository.claimStuckOrders(STUCK_STATUS_NAMES, cutoff, now, afterId, batchSize);
+        if (!orders.isEmpty()) {
+            orderRepository.leaseOrders(orders.stream().map(Order::getId).toList(), now.plus(lease));
+        }
+        meterRegistry.counter("orders.reconciliation.claimed").increment(orders.size());
+        return orders;
+    }
+    
+    private void reconcile(Order order) {
+        PaymentResponse payment;
+        try {
+            payment = paymentStatusClient.getPaymentByOrderNumber(order.getOrderNumber());
+        } catch (FeignException.NotFound e) {
+            if (!isNoPaymentRecorded(e, order)) {
+                log.warn("Unexpected 404 querying payment for stuck order {}: {}", order.getOrderNumber(), e.getMessage());
+                defer("error");
+                return;
+            }
+            payment = null;
+        } catch (Exception e) {
+            log.warn("Could not query payment for stuck order {}: {}", order.getOrderNumber(), e.getMessage());
+            defer("error");
+            return;
+        }
+        
+        OrderStatus resolved;
+        String paymentId = null;
+        if (payment != null && "COMPLETED".equals(payment.getStatus())) {
+            resolved = OrderStatus.PAYMENT_COMPLETED;
+            paymentId = payment.getPaymentId();
+        } else if (payment == null || "FAILED".equals(payment.getStatus())) {
+            resolved = OrderStatus.PAYMENT_FAILED;
+        } else {
+            // Left leased, so the order is retried once the lease runs out
+            log.debug("Payment for order {} still in status {}", order.getOrderNumber(), payment.getStatus());
+            defer("pending");
+            return;
+        }
+        
+        String resolvedPaymentId = paymentId;
+        Integer applied = transactionTemplate.execute(tx -> orderRepository.resolveStuckOrder(
+                order.getId(), STUCK_STATUSES, resolved, resolvedPaymentId, LocalDateTime.now()));
+        if (applied == null || applied == 0) {
+            log.info("Stuck order {} was resolved elsewhere, skipping", order.getOrderNumber());
+            meterRegistry.counter("orders.reconciliation.superseded").increment();
+            return;
+        }
+        
+        meterRegistry.counter("orders.reconciliation.resolved", "outcome", resolved.name().toLowerCase()).increment();
+        log.info("Resolved stuck order {} to {}", order.getOrderNumber(), resolved);
+        
+        if (resolved == OrderStatus.PAYMENT_COMPLETED) {
+            order.setStatus(resolved);
+            order.setPaymentId(resolvedPaymentId);
+            orderService.notifyOrderCreated(order);
+        }
+    }
+    
+    /**
+     * A 404 only means "no payment taken" when the payment service says so for this order,
+     * see {@link PaymentStatusClient#getPaymentByOrderNumber}.
+     */
+    private boolean isNoPaymentRecorded(FeignException.NotFound e, Order order) {
+        byte[] body = e.content();
+        if (body == null || body.length == 0) {
+            return false;
+        }
+        try {
+            PaymentResponse response = objectMapper.readValue(body, PaymentResponse.class);
+            return order.getOrderNumber().equals(response.getOrderNumber());
+        } catch (Exception parseException) {
+            return false;
+        }
+    }
+    
+    private void defer(String reason) {
+        meterRegistry.counter("orders.reconciliation.deferred", "reason", reason).increment();
+    }
+}
@@ -5,6 +5,8 @@ import com.dissertation.orderservice.client.NotificationServiceClient;
 import com.dissertation.orderservice.client.PaymentServiceClient;
 import com.dissertation.orderservice.client.UserServiceClient;
 import com.dissertation.orderservice.dto.*;
+import com.dissertation.orderservice.model.Order;
+import com.dissertation.orderservice.model.OrderStatus;
 import com.dissertation.orderservice.repository.OrderRepository;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -16,16 +18,27 @@ import org.springframework.http.MediaType;
 import org.springframework.test.web.servlet.MockMvc;
 
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 
+import static org.hamcrest.Matchers.not;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.Mockito.when;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.*;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
 
-@SpringBootTest
+@SpringBootTest(properties = {
+        "orders.reconciliation.enabled=false",
+        "orders.polling.updated-since-overlap=PT10S"
+})
 @AutoConfigureMockMvc
 class OrderControllerTest {
     
+    private static final Duration UPDATED_SINCE_OVERLAP = Duration.ofSeconds(10);
+    
     @Autowired
     private MockMvc mockMvc;
     
@@ -77,6 +90,26 @@ class OrderControllerTest {
                 .andExpect(jsonPath("$.status").value("PAYMENT_COMPLETED"));
     }
     
+    @Test
+    void shouldKeepOrderInPaymentProcessingWhenPaymentCallFails() throws Exception {
+        when(paymentServiceClient.processPayment(any())).thenThrow(new RuntimeException("Read timed out"));
+        
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setUsername("testuser");
+        request.setProductName("Laptop");
+        request.setQuantity(1);
+        request.setUnitPrice(BigDecimal.valueOf(999.99));
+        
+        mockMvc.perform(post("/api/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)))
+                .andExpect(status().isInternalServerError());
+        
+        List<Order> orders = orderRepository.findAll();
+        assertEquals(1, orders.size());
+        assertEquals(OrderStatus.PAYMENT_PROCESSING, orders.get(0).getStatus());
+    }
+    
     @Test
     void shouldGetOrdersByUsername() throws Exception {
         CreateOrderRequest request = new CreateOrderRequest();
@@ -94,5 +127,230 @@ class OrderControllerTest {
                 .andExpect(jsonPath("$").isArray())
                 .andExpect(jsonPath("$[0].username").value("testuser"));
     }
+    
+    @Test
+    void shouldBulkUpdateOrderStatus() throws Exception {
+        CreateOrderRequest request = new CreateOrderRequest();
+        request.setUsername("testuser");
+        request.setProductName("Laptop");
+        request.setQuantity(1);
+        request.setUnitPrice(BigDecimal.valueOf(999.99));
+        
+        mockMvc.perform(post("/api/orders")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(request)));
+        
+        String orderNumber = orderRepository.findAll().get(0).getOrderNumber();
+        Map<String, Object> bulkRequest = Map.of(
+                "orderNumbers", List.of(orderNumber, "ORD-MISSING"),
+                "targetStatus", "SHIPPED");
+        
+        mockMvc.perform(patch("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(bulkRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updatedCount").value(1))
+                .andExpect(jsonPath("$.results[0].orderNumber").value(orderNumber))
+                .andExpect(jsonPath("$.results[0].previousStatus").value("PAYMENT_COMPLETED"))
+                .andExpect(jsonPath("$.results[0].outcome").value("UPDATED"))
+                .andExpect(jsonPath("$.results[1].outcome").value("NOT_FOUND"));
+        
+        mockMvc.perform(get("/api/orders/" + orderNumber))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("SHIPPED"));
+    }
+    
+    @Test
+    void shouldBulkUpdateOrdersInCurrentStatus() throws Exception {
+        saveOrder("ORD-CONF0001", OrderStatus.CONFIRMED);
+        saveOrder("ORD-CONF0002", OrderStatus.CONFIRMED);
+        saveOrder("ORD-PEND0001", OrderStatus.PENDING);
+        
+        Map<String, Object> bulkRequest = Map.of(
+                "currentStatus", "CONFIRMED",
+                "targetStatus", "SHIPPED");
+        
+        mockMvc.perform(patch("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(bulkRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updatedCount").value(2))
+                .andExpect(jsonPath("$.results.length()").value(2))
+                .andExpect(jsonPath("$.results[0].outcome").value("UPDATED"))
+                .andExpect(jsonPath("$.results[1].outcome").value("UPDATED"));
+        
+        mockMvc.perform(get("/api/orders/ORD-PEND0001"))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+    
+    @Test
+    void shouldReportSkippedAndUnchangedOrdersInBulkUpdate() throws Exception {
+        saveOrder("ORD-CONF0001", OrderStatus.CONFIRMED);
+        saveOrder("ORD-SHIP0001", OrderStatus.SHIPPED);
+        saveOrder("ORD-PEND0001", OrderStatus.PENDING);
+        
+        Map<String, Object> bulkRequest = Map.of(
+                "orderNumbers", List.of("ORD-CONF0001", "ORD-SHIP0001", "ORD-PEND0001"),
+                "currentStatus", "CONFIRMED",
+                "targetStatus", "SHIPPED");
+        
+        mockMvc.perform(patch("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(bulkRequest)))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.updatedCount").value(1))
+                .andExpect(jsonPath("$.results[0].outcome").value("UPDATED"))
+                .andExpect(jsonPath("$.results[1].outcome").value("UNCHANGED"))
+                .andExpect(jsonPath("$.results[2].previousStatus").value("PENDING"))
+                .andExpect(jsonPath("$.results[2].outcome").value("SKIPPED"));
+        
+        mockMvc.perform(get("/api/orders/ORD-PEND0001"))
+                .andExpect(jsonPath("$.status").value("PENDING"));
+    }
+    
+    @Test
+    void shouldRejectBulkUpdateWithoutSelector() throws Exception {
+        mockMvc.perform(patch("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(Map.of("targetStatus", "SHIPPED"))))
+                .andExpect(status().isBadRequest());
+    }
+    
+    @Test
+    void shouldReturnNotModifiedWhenEtagMatches() throws Exception {
+        saveOrder("ORD-ETAG0001", OrderStatus.CONFIRMED);
+        
+        String orderEtag = mockMvc.perform(get("/api/orders/ORD-ETAG0001"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        
+        mockMvc.perform(get("/api/orders/ORD-ETAG0001").header("If-None-Match", orderEtag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+        
+        String listEtag = mockMvc.perform(get("/api/orders/user/testuser"))
+                .andExpect(status().isOk())
+                .andExpect(header().exists("ETag"))
+                .andReturn().getResponse().getHeader("ETag");
+        
+        mockMvc.perform(get("/api/orders/user/testuser").header("If-None-Match", listEtag))
+                .andExpect(status().isNotModified())
+                .andExpect(content().string(""));
+    }
+    
+    @Test
+    void shouldChangeEtagsAfterStatusUpdates() throws Exception {
+        saveOrder("ORD-ETAG0001", OrderStatus.CONFIRMED);
+        String orderEtag = mockMvc.perform(get("/api/orders/ORD-ETAG0001"))
+                .andReturn().getResponse().getHeader("ETag");
+        String listEtag = mockMvc.perform(get("/api/orders/user/testuser"))
+                .andReturn().getResponse().getHeader("ETag");
+        
+        mockMvc.perform(patch("/api/orders/ORD-ETAG0001/status").param("status", "SHIPPED"))
+                .andExpect(status().isOk());
+        
+        String patchedOrderEtag = mockMvc.perform(get("/api/orders/ORD-ETAG0001").header("If-None-Match", orderEtag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("SHIPPED"))
+                .andExpect(header().string("ETag", not(orderEtag)))
+                .andReturn().getResponse().getHeader("ETag");
+        String patchedListEtag = mockMvc.perform(get("/api/orders/user/testuser").header("If-None-Match", listEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(listEtag)))
+                .andReturn().getResponse().getHeader("ETag");
+        
+        Map<String, Object> bulkRequest = Map.of(
+                "orderNumbers", List.of("ORD-ETAG0001"),
+                "targetStatus", "DELIVERED");
+        mockMvc.perform(patch("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(bulkRequest)))
+                .andExpect(jsonPath("$.updatedCount").value(1));
+        
+        mockMvc.perform(get("/api/orders/ORD-ETAG0001").header("If-None-Match", patchedOrderEtag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("DELIVERED"))
+                .andExpect(header().string("ETag", not(patchedOrderEtag)));
+        mockMvc.perform(get("/api/orders/user/testuser").header("If-None-Match", patchedListEtag))
+                .andExpect(status().isOk())
+                .andExpect(header().string("ETag", not(patchedListEtag)));
+    }
+    
+    @Test
+    void shouldKeepLastWriteWinsAfterConcurrentBulkUpdate() throws Exception {
+        Order stale = saveOrder("ORD-LWW00001", OrderStatus.CONFIRMED);
+        
+        Map<String, Object> bulkRequest = Map.of(
+                "orderNumbers", List.of("ORD-LWW00001"),
+                "targetStatus", "SHIPPED");
+        mockMvc.perform(patch("/api/orders/status")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(objectMapper.writeValueAsString(bulkRequest)))
+                .andExpect(jsonPath("$.updatedCount").value(1));
+        
+        // A copy read before the bulk update is still written, as before ETags existed
+        stale.setStatus(OrderStatus.CANCELLED);
+        orderRepository.save(stale);
+        
+        mockMvc.perform(patch("/api/orders/ORD-LWW00001/status").param("status", "DELIVERED"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status").value("DELIVERED"));
+    }
+    
+    @Test
+    void shouldReturnOnlyOrdersUpdatedSince() throws Exception {
+        Order order = saveOrder("ORD-DELTA001", OrderStatus.CONFIRMED);
+        LocalDateTime lastUpdatedAt = orderRepository.findById(order.getId()).orElseThrow().getUpdatedAt();
+        
+        // The server looks back UPDATED_SINCE_OVERLAP before the cursor
+        mockMvc.perform(get("/api/orders/user/testuser")
+                .param("updatedSince", lastUpdatedAt.plus(UPDATED_SINCE_OVERLAP).minusSeconds(1).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1));
+        
+        mockMvc.perform(get("/api/orders/user/testuser")
+                .param("updatedSince", lastUpdatedAt.plus(UPDATED_SINCE_OVERLAP).toString()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0));
+    }
+    
+    @Test
+    void shouldCombineUpdatedSinceWithIfNoneMatch() throws Exception {
+        Order order = saveOrder("ORD-DELTA001", OrderStatus.CONFIRMED);
+        LocalDateTime lastUpdatedAt = orderRepository.findById(order.getId()).orElseThrow().getUpdatedAt();
+        String updatedSince = lastUpdatedAt.plus(UPDATED_SINCE_OVERLAP).toString();
+        
+        String etag = mockMvc.perform(get("/api/orders/user/testuser").param("updatedSince", updatedSince))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(0))
+                .andReturn().getResponse().getHeader("ETag");
+        
+        mockMvc.perform(get("/api/orders/user/testuser")
+                .param("updatedSince", updatedSince)
+                .header("If-None-Match", etag))
+                .andExpect(status().isNotModified());
+        
+        mockMvc.perform(patch("/api/orders/ORD-DELTA001/status").param("status", "SHIPPED"))
+                .andExpect(status().isOk());
+        
+        mockMvc.perform(get("/api/orders/user/testuser")
+                .param("updatedSince", updatedSince)
+                .header("If-None-Match", etag))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.length()").value(1))
+                .andExpect(jsonPath("$[0].orderNumber").value("ORD-DELTA001"))
+                .andExpect(jsonPath("$[0].status").value("SHIPPED"));
+    }
+    
+    private Order saveOrder(String orderNumber, OrderStatus status) {
+        return orderRepository.save(Order.builder()
+                .orderNumber(orderNumber)
+                .username("testuser")
+                .productName("Laptop")
+                .quantity(1)
+                .totalAmount(BigDecimal.valueOf(999.99))
+                .status(status)
+                .build());
+    }
 }
-
@@ -0,0 +1,209 @@
+package com.dissertation.orderservice.service;
+
+import com.dissertation.orderservice.client.NotificationServiceClient;
+import com.dissertation.orderservice.client.PaymentServiceClient;
+import com.dissertation.orderservice.client.PaymentStatusClient;
+import com.dissertation.orderservice.client.UserServiceClient;
+import com.dissertation.orderservice.dto.PaymentResponse;
+import com.dissertation.orderservice.dto.UserResponse;
+import com.dissertation.orderservice.model.Order;
+import com.dissertation.orderservice.model.OrderStatus;
+import com.dissertation.orderservice.repository.OrderRepository;
+import feign.FeignException;
+import feign.Request;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest(properties = {
+        "orders.reconciliation.enabled=true",
+        "orders.reconciliation.initial-delay=PT24H",
+        "orders.reconciliation.stuck-after=PT5M"
+})
+class StuckOrderReconcilerTest {
+    
+    @Autowired
+    private StuckOrderReconciler reconciler;
+    
+    @Autowired
+    private OrderRepository orderRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+    
+    @MockBean
+    private PaymentStatusClient paymentStatusClient;
+    
+    @MockBean
+    private PaymentServiceClient paymentServiceClient;
+    
+    @MockBean
+    private UserServiceClient userServiceClient;
+    
+    @MockBean
+    private NotificationServiceClient notificationServiceClient;
+    
+    @BeforeEach
+    void setUp() {
+        orderRepository.deleteAll();
+        
+        UserResponse mockUser = new UserResponse();
+        mockUser.setUsername("testuser");
+        mockUser.setEmail("test@example.com");
+        mockUser.setActive(true);
+        when(userServiceClient.getUserByUsername(any())).thenReturn(mockUser);
+    }
+    
+    @Test
+    void shouldCompleteOrderWhenPaymentCompleted() {
+        Order order = saveStuckOrder("ORD-STUCK001", OrderStatus.PAYMENT_PROCESSING);
+        when(paymentStatusClient.getPaymentByOrderNumber("ORD-STUCK001")).thenReturn(payment("PAY-123", "COMPLETED"));
+        
+        reconciler.sweep();
+        
+        Order resolved = orderRepository.findById(order.getId()).orElseThrow();
+        assertEquals(OrderStatus.PAYMENT_COMPLETED, resolved.getStatus());
+        assertEquals("PAY-123", resolved.getPaymentId());
+        assertNull(resolved.getClaimedUntil());
+        verify(notificationServiceClient).sendNotification(any());
+    }
+    
+    @Test
+    void shouldFailOrderWhenNoPaymentRecorded() {
+        Order order = saveStuckOrder("ORD-STUCK002", OrderStatus.PENDING);
+        when(paymentStatusClient.getPaymentByOrderNumber("ORD-STUCK002"))
+                .thenThrow(notFound("ORD-STUCK002", "{\"orderNumber\":\"ORD-STUCK002\"}"));
+        
+        reconciler.sweep();
+        
+        assertEquals(OrderStatus.PAYMENT_FAILED, orderRepository.findById(order.getId()).orElseThrow().getStatus());
+        verify(notificationServiceClient, never()).sendNotification(any());
+    }
+    
+    @Test
+    void shouldLeaveOrderWhenPaymentRouteIsMissing() {
+        Order order = saveStuckOrder("ORD-STUCK004", OrderStatus.PAYMENT_PROCESSING);
+        when(paymentStatusClient.getPaymentByOrderNumber("ORD-STUCK004"))
+                .thenThrow(notFound("ORD-STUCK004",
+                        "{\"status\":404,\"error\":\"Not Found\",\"path\":\"/api/payments/order/ORD-STUCK004\"}"));
+        
+        reconciler.sweep();
+        
+        assertEquals(OrderStatus.PAYMENT_PROCESSING, orderRepository.findById(order.getId()).orElseThrow().getStatus());
+    }
+    
+    @Test
+    void shouldLeaveOrderLeasedWhilePaymentInProgress() {
+        Order order = saveStuckOrder("ORD-STUCK003", OrderStatus.PAYMENT_PROCESSING);
+        when(paymentStatusClient.getPaymentByOrderNumber("ORD-STUCK003")).thenReturn(payment("PAY-456", "PROCESSING"));
+        
+        reconciler.sweep();
+        reconciler.sweep();
+        
+        Order unchanged = orderRepository.findById(order.getId()).orElseThrow();
+        assertEquals(OrderStatus.PAYMENT_PROCESSING, unchanged.getStatus());
+        assertNull(unchanged.getPaymentId());
+        assertNotNull(unchanged.getClaimedUntil());
+        assertTrue(unchanged.getClaimedUntil().isAfter(LocalDateTime.now()));
+        verify(paymentStatusClient, times(1)).getPaymentByOrderNumber("ORD-STUCK003");
+    }
+    
+    @Test
+    void shouldSkipOrdersLockedByConcurrentClaim() throws Exception {
+        saveStuckOrder("ORD-STUCK005", OrderStatus.PENDING);
+        ExecutorService otherReplica = Executors.newSingleThreadExecutor();
+        try {
+            List<Order> first = transactionTemplate.execute(tx -> {
+                List<Order> claimed = claim();
+                // The first claim still holds its row lock while the second one runs
+                assertTrue(claimOn(otherReplica).isEmpty());
+                return claimed;
+            });
+            assertEquals(1, first.size());
+        } finally {
+            otherReplica.shutdownNow();
+        }
+    }
+    
+    @Test
+    void shouldNotClaimRecentOrders() {
+        Order order = orderRepository.save(newOrder("ORD-FRESH001", OrderStatus.PAYMENT_PROCESSING));
+        
+        reconciler.sweep();
+        
+        assertEquals(OrderStatus.PAYMENT_PROCESSING, orderRepository.findById(order.getId()).orElseThrow().getStatus());
+        verify(paymentStatusClient, never()).getPaymentByOrderNumber(anyString());
+    }
+    
+    private List<Order> claim() {
+        return orderRepository.claimStuckOrders(List.of("PENDING", "PAYMENT_PROCESSING"),
+                LocalDateTime.now().minusMinutes(5), LocalDateTime.now(), 0, 20);
+    }
+    
+    private List<Order> claimOn(ExecutorService executor) {
+        try {
+            return executor.submit(() -> transactionTemplate.execute(tx -> claim())).get(10, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            throw new IllegalStateException("Concurrent claim failed", e);
+        }
+    }
+    
+    private Order saveStuckOrder(String orderNumber, OrderStatus status) {
+        Order order = orderRepository.save(newOrder(orderNumber, status));
+        LocalDateTime stuckSince = LocalDateTime.now().minusMinutes(10);
+        jdbcTemplate.update("UPDATE orders SET created_at = ?, updated_at = ? WHERE id = ?",
+                stuckSince, stuckSince, order.getId());
+        return order;
+    }
+    
+    private static Order newOrder(String orderNumber, OrderStatus status) {
+        return Order.builder()
+                .orderNumber(orderNumber)
+                .username("testuser")
+                .productName("Laptop")
+                .quantity(1)
+                .totalAmount(BigDecimal.valueOf(999.99))
+                .status(status)
+                .build();
+    }
+    
+    private static FeignException notFound(String orderNumber, String body) {
+        Request request = Request.create(Request.HttpMethod.GET, "/api/payments/order/" + orderNumber,
+                Map.of(), null, StandardCharsets.UTF_8, null);
+        return new FeignException.NotFound("Not Found", request, body.getBytes(StandardCharsets.UTF_8), Map.of());
+    }
+    
+    private static PaymentResponse payment(String paymentId, String status) {
+        PaymentResponse payment = new PaymentResponse();
+        payment.setPaymentId(paymentId);
+        payment.setStatus(status);
+        return payment;
+    }
+}